@@ -0,0 +1,73 @@
+package com.zcshen.perf.wpo.filter;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Servlet filter which minifies the whole HTML page, see {@link HtmlMinifierWriter}.
+ * 
+ * <ul>
+ * Init parameters:
+ * <li>enabled: decides whether minification is enabled. Default is true.
+ * <li>bufferSize: size of the buffer in chars the minified page is streamed through. Default is 8192.
+ * </ul>
+ * 
+ * @author Malcolm
+ * 
+ */
+public class HtmlMinifierFilter implements Filter {
+
+	private static final Logger log = LoggerFactory.getLogger(HtmlMinifierFilter.class);
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private boolean enabled = true;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		String enabledParam = filterConfig.getInitParameter("enabled");
+		if (StringUtils.isNotBlank(enabledParam)) {
+			enabled = Boolean.parseBoolean(enabledParam.trim());
+		}
+
+		String bufferSizeParam = filterConfig.getInitParameter("bufferSize");
+		if (StringUtils.isNotBlank(bufferSizeParam)) {
+			try {
+				bufferSize = Math.max(Integer.parseInt(bufferSizeParam.trim()), 1);
+			} catch (NumberFormatException e) {
+				log.warn("Invalid bufferSize " + bufferSizeParam + ", use default " + DEFAULT_BUFFER_SIZE);
+			}
+		}
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
+			ServletException {
+		if (!enabled || !(response instanceof HttpServletResponse)) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		HtmlMinifierResponseWrapper wrapper = new HtmlMinifierResponseWrapper((HttpServletResponse) response, bufferSize);
+		try {
+			chain.doFilter(request, wrapper);
+		} finally {
+			wrapper.finish();
+		}
+	}
+
+	@Override
+	public void destroy() {
+	}
+}
@@ -0,0 +1,129 @@
+package com.zcshen.perf.wpo.filter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response wrapper which minifies HTML written through {@link #getWriter()}.
+ * Content written through {@link #getOutputStream()}, or with a content type other than text/html when the writer is obtained, 
+ * is passed through together with its Content-Length.
+ * 
+ * @author Malcolm
+ * 
+ */
+public class HtmlMinifierResponseWrapper extends HttpServletResponseWrapper {
+
+	private static final String TEXT_HTML = "text/html";
+	private static final String CONTENT_LENGTH = "Content-Length";
+
+	private final int bufferSize;
+	private HtmlMinifierWriter minifier;
+	private PrintWriter writer;
+	private boolean outputStreamUsed = false;
+
+	public HtmlMinifierResponseWrapper(HttpServletResponse response, int bufferSize) {
+		super(response);
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (writer == null) {
+			if (isHtml()) {
+				minifier = new HtmlMinifierWriter(super.getWriter(), bufferSize);
+				writer = new PrintWriter(minifier);
+			} else {
+				writer = super.getWriter();
+			}
+		}
+		return writer;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		outputStreamUsed = true;
+		return super.getOutputStream();
+	}
+
+	private boolean isHtml() {
+		// content written before the content type is set is unknown, it is passed through.
+		String contentType = getContentType();
+		return contentType != null && contentType.trim().toLowerCase().startsWith(TEXT_HTML);
+	}
+
+	/**
+	 * @return whether the response is, or is going to be, written through the minifier
+	 */
+	private boolean isMinified() {
+		return (minifier != null) || (writer == null && !outputStreamUsed && isHtml());
+	}
+
+	@Override
+	public void setContentLength(int len) {
+		// the length changes after minification, leave it to the container.
+		if (!isMinified()) {
+			super.setContentLength(len);
+		}
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		if (!isMinified() || !CONTENT_LENGTH.equalsIgnoreCase(name)) {
+			super.setHeader(name, value);
+		}
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		if (!isMinified() || !CONTENT_LENGTH.equalsIgnoreCase(name)) {
+			super.addHeader(name, value);
+		}
+	}
+
+	@Override
+	public void setIntHeader(String name, int value) {
+		if (!isMinified() || !CONTENT_LENGTH.equalsIgnoreCase(name)) {
+			super.setIntHeader(name, value);
+		}
+	}
+
+	@Override
+	public void flushBuffer() throws IOException {
+		if (writer != null) {
+			writer.flush();
+		}
+		super.flushBuffer();
+	}
+
+	@Override
+	public void resetBuffer() {
+		super.resetBuffer();
+		if (minifier != null) {
+			minifier.discard();
+		}
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		if (minifier != null) {
+			minifier.discard();
+		}
+	}
+
+	/**
+	 * Writes out the content still held by the minifier.
+	 * 
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		if (minifier != null) {
+			writer.flush();
+			minifier.finish();
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package com.zcshen.perf.wpo.filter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streaming HTML minifier.  
+ * It collapses whitespace between tags and inside tags, and removes comments, while content of 
+ * &lt;pre&gt;, &lt;textarea&gt;, &lt;script&gt; and &lt;style&gt; is written out as is.
+ * IE conditional comments are kept.
+ * 
+ * The writer never holds the whole page: output is flushed through a fixed size buffer, 
+ * and at most a tag name is kept aside to decide how the following content is handled.
+ * 
+ * @author Malcolm
+ * 
+ */
+public class HtmlMinifierWriter extends Writer {
+
+	private static final int MAX_TAG_NAME_LENGTH = 16;
+	private static final String COMMENT_START = "<!--";
+	private static final String[] RAW_TEXT_TAGS = { "pre", "textarea", "script", "style" };
+
+	private final Writer out;
+	private final char[] buffer;
+	private int count = 0;
+
+	private ParseState state = ParseState.TEXT;
+	private final StringBuilder markup = new StringBuilder(MAX_TAG_NAME_LENGTH + 2);
+	private boolean pendingSpace = false;
+	private boolean pendingNewLine = false;
+	private boolean spaceInTag = false;
+	private boolean afterEquals = false;
+	private int quote = -1;
+	private int dashes = 0;
+	private String rawEndTag = null;
+	private int rawMatched = 0;
+
+	public HtmlMinifierWriter(Writer out, int bufferSize) {
+		this.out = out;
+		this.buffer = new char[bufferSize];
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++) {
+			write(cbuf[i]);
+		}
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		write((char) c);
+	}
+
+	private void write(char c) throws IOException {
+		switch (state) {
+		case TEXT:
+			if (Character.isWhitespace(c)) {
+				pendingSpace = true;
+				pendingNewLine |= (c == '\n');
+			} else if (c == '<') {
+				// keep whitespace pending, it is dropped together with a comment if no text follows.
+				markup.setLength(0);
+				markup.append(c);
+				state = ParseState.TAG_OPEN;
+			} else {
+				writeSpace();
+				emit(c);
+			}
+			break;
+
+		case TAG_OPEN:
+			markup.append(c);
+			if (!isCommentStartPrefix()) {
+				boolean closing = markup.length() > 1 && markup.charAt(1) == '/';
+				int nameStart = closing ? 2 : 1;
+				boolean nameChar = Character.isLetterOrDigit(c) || (c == '/' && markup.length() == 2);
+				if (!nameChar || markup.length() > MAX_TAG_NAME_LENGTH) {
+					String name = markup.substring(nameStart, nameChar ? markup.length() : markup.length() - 1);
+					endTagOpen(name, closing, c);
+				}
+			} else if (markup.length() == COMMENT_START.length()) {
+				state = ParseState.COMMENT_OPEN;
+			}
+			break;
+
+		case COMMENT_OPEN:
+			if (c == '[') {
+				// IE conditional comment
+				writeSpace();
+				emit(COMMENT_START);
+				emit(c);
+				state = ParseState.CONDITIONAL_COMMENT;
+			} else {
+				state = ParseState.COMMENT;
+				dashes = (c == '-') ? 1 : 0;
+			}
+			break;
+
+		case COMMENT:
+			if (c == '>' && dashes >= 2) {
+				state = ParseState.TEXT;
+			}
+			dashes = (c == '-') ? dashes + 1 : 0;
+			break;
+
+		case CONDITIONAL_COMMENT:
+			emit(c);
+			if (c == '>' && dashes >= 2) {
+				state = ParseState.TEXT;
+			}
+			dashes = (c == '-') ? dashes + 1 : 0;
+			break;
+
+		case TAG:
+			if (quote != -1) {
+				emit(c);
+				if (c == quote) {
+					quote = -1;
+				}
+			} else if (Character.isWhitespace(c)) {
+				spaceInTag = true;
+			} else {
+				if (spaceInTag && c != '>') {
+					emit(' ');
+				}
+				spaceInTag = false;
+				emit(c);
+				if ((c == '"' || c == '\'') && afterEquals) {
+					// only a quote starting an attribute value, e.g. not the one in <a title=it's>
+					quote = c;
+				} else if (c == '>') {
+					state = (rawEndTag == null) ? ParseState.TEXT : ParseState.RAW_TEXT;
+				}
+				afterEquals = (c == '=');
+			}
+			break;
+
+		case RAW_TEXT:
+			emit(c);
+			if (Character.toLowerCase(c) == rawEndTag.charAt(rawMatched)) {
+				rawMatched++;
+				if (rawMatched == rawEndTag.length()) {
+					rawEndTag = null;
+					rawMatched = 0;
+					spaceInTag = false;
+					afterEquals = false;
+					state = ParseState.TAG;
+				}
+			} else {
+				rawMatched = (c == '<') ? 1 : 0;
+			}
+			break;
+		}
+	}
+
+	private void endTagOpen(String name, boolean closing, char last) throws IOException {
+		writeSpace();
+		if (name.length() == 0 && !closing) {
+			// not a tag, e.g. "a < b" in text, handle the last char as text again.
+			markup.setLength(markup.length() - 1);
+			emit(markup);
+			state = ParseState.TEXT;
+			write(last);
+			return;
+		}
+
+		// flush the markup without the char which ended the tag name, it is handled as part of the tag.
+		markup.setLength(markup.length() - (Character.isLetterOrDigit(last) ? 0 : 1));
+		emit(markup);
+		rawEndTag = closing ? null : getRawEndTag(name);
+		spaceInTag = false;
+		afterEquals = false;
+		quote = -1;
+		state = ParseState.TAG;
+		if (!Character.isLetterOrDigit(last)) {
+			write(last);
+		}
+	}
+
+	/**
+	 * Whether the markup read so far could still be the start of a comment, compared in place for every char.
+	 */
+	private boolean isCommentStartPrefix() {
+		if (markup.length() > COMMENT_START.length()) {
+			return false;
+		}
+		for (int i = 0; i < markup.length(); i++) {
+			if (markup.charAt(i) != COMMENT_START.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String getRawEndTag(String name) {
+		for (String rawTag : RAW_TEXT_TAGS) {
+			if (rawTag.equalsIgnoreCase(name)) {
+				return "</" + rawTag;
+			}
+		}
+		return null;
+	}
+
+	private void writeSpace() throws IOException {
+		if (pendingSpace) {
+			emit(pendingNewLine ? '\n' : ' ');
+			pendingSpace = false;
+			pendingNewLine = false;
+		}
+	}
+
+	private void emit(CharSequence chars) throws IOException {
+		for (int i = 0; i < chars.length(); i++) {
+			emit(chars.charAt(i));
+		}
+	}
+
+	private void emit(char c) throws IOException {
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = c;
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Writes out everything held by the minifier, without closing the underlying writer.
+	 * 
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		if (state == ParseState.TAG_OPEN) {
+			writeSpace();
+			emit(markup);
+			state = ParseState.TEXT;
+		}
+		writeSpace();
+		flush();
+	}
+
+	/**
+	 * Discards content not yet written to the underlying writer, and starts over as at the beginning of a page.
+	 */
+	public void discard() {
+		count = 0;
+		state = ParseState.TEXT;
+		markup.setLength(0);
+		pendingSpace = false;
+		pendingNewLine = false;
+		spaceInTag = false;
+		afterEquals = false;
+		quote = -1;
+		dashes = 0;
+		rawEndTag = null;
+		rawMatched = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+		out.close();
+	}
+
+	//States
+	enum ParseState {
+		TEXT,
+		TAG_OPEN,
+		TAG,
+		COMMENT_OPEN,
+		COMMENT,
+		CONDITIONAL_COMMENT,
+		RAW_TEXT
+	}
+}
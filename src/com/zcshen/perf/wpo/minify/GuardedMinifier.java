@@ -0,0 +1,158 @@
+package com.zcshen.perf.wpo.minify;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a minifier engine isolated from the request thread.  
+ * An invocation which fails or takes longer than the timeout returns the content unminified.
+ * After a number of consecutive failures the circuit breaker opens, and the engine is not invoked for a while.
+ * Every engine runs on its own small pool of daemon threads, so a stuck engine never blocks the others.
+ * A timed out invocation cannot be stopped if the engine ignores interrupts, 
+ * so the engine is not invoked again until it returns, the content is returned unminified meanwhile.
+ * Invocations refused for busy or stuck threads count as failures for the circuit breaker.
+ * 
+ * @author Malcolm
+ * 
+ */
+public class GuardedMinifier {
+
+	private static final Logger log = LoggerFactory.getLogger(GuardedMinifier.class);
+	private static final int MAX_THREADS = 2;
+	private static final int FAILURE_THRESHOLD = 3;
+	private static final long OPEN_CIRCUIT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+	private static final long RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	private static final int RUNNING = 0;
+	private static final int DONE = 1;
+	private static final int ABANDONED = 2;
+
+	private final Minifier minifier;
+	private final ExecutorService executor;
+	private final MinifierStats stats = new MinifierStats();
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+	// timed out invocations which are still running
+	private final AtomicInteger stuck = new AtomicInteger();
+	private volatile long openUntil = 0;
+
+	public GuardedMinifier(final Minifier minifier) {
+		this.minifier = minifier;
+		this.executor = new ThreadPoolExecutor(0, MAX_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "wpo-minifier-" + minifier.getName() + "-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * @param content content to minify
+	 * @param timeout timeout in milliseconds
+	 * @return minified content, or a fallback with the content as is if it cannot be minified in time
+	 */
+	public MinifyResult minify(final String content, long timeout) {
+		if (System.currentTimeMillis() < openUntil) {
+			stats.skip();
+			return fallback(content);
+		}
+		if (stuck.get() > 0) {
+			stats.reject();
+			log.warn("Minifier " + minifier.getName() + " skipped, a previous invocation is still running");
+			fail();
+			return fallback(content);
+		}
+
+		final long startTime = System.nanoTime();
+		final AtomicInteger taskState = new AtomicInteger(RUNNING);
+		Future<String> future = null;
+		try {
+			future = executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					try {
+						StringWriter writer = new StringWriter(content.length());
+						minifier.minify(new StringReader(content), writer);
+						return writer.toString();
+					} finally {
+						if (!taskState.compareAndSet(RUNNING, DONE)) {
+							// abandoned after the timeout, the engine could be invoked again.
+							stuck.decrementAndGet();
+						}
+					}
+				}
+			});
+			String minified = future.get(timeout, TimeUnit.MILLISECONDS);
+			stats.success(content.length(), minified.length(), System.nanoTime() - startTime);
+			consecutiveFailures.set(0);
+			return new MinifyResult(minified, false, 0);
+		} catch (TimeoutException e) {
+			abandon(future, taskState);
+			stats.timeout();
+			log.warn("Minifier " + minifier.getName() + " timed out after " + timeout + "ms");
+			fail();
+		} catch (ExecutionException e) {
+			stats.failure();
+			log.warn("Minifier " + minifier.getName() + " failed", e.getCause());
+			fail();
+		} catch (RejectedExecutionException e) {
+			stats.reject();
+			log.warn("Minifier " + minifier.getName() + " skipped, all its threads are busy");
+			fail();
+		} catch (InterruptedException e) {
+			abandon(future, taskState);
+			Thread.currentThread().interrupt();
+		}
+		return fallback(content);
+	}
+
+	/**
+	 * Cancels an invocation, it is counted as stuck until it actually returns.
+	 */
+	private void abandon(Future<String> future, AtomicInteger taskState) {
+		if (taskState.compareAndSet(RUNNING, ABANDONED)) {
+			stuck.incrementAndGet();
+		}
+		future.cancel(true);
+	}
+
+	private MinifyResult fallback(String content) {
+		long retryAfter = Math.max(openUntil, System.currentTimeMillis() + RETRY_DELAY_MILLIS);
+		return new MinifyResult(content, true, retryAfter);
+	}
+
+	private void fail() {
+		if (consecutiveFailures.incrementAndGet() >= FAILURE_THRESHOLD) {
+			consecutiveFailures.set(0);
+			openUntil = System.currentTimeMillis() + OPEN_CIRCUIT_MILLIS;
+			log.error("Minifier " + minifier.getName() + " is disabled for " + OPEN_CIRCUIT_MILLIS + "ms after "
+					+ FAILURE_THRESHOLD + " consecutive failures");
+		}
+	}
+
+	public Minifier getMinifier() {
+		return minifier;
+	}
+
+	public MinifierStats getStats() {
+		return stats;
+	}
+}
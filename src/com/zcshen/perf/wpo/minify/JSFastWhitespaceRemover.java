@@ -0,0 +1,197 @@
+package com.zcshen.perf.wpo.minify;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * This class is extracted from http://code.google.com/p/granule/ project.  
+ * Thanks for that. 
+ * 
+ * Simple and Fast JS Compresser. It removes whitespace and comments from source code in safest way is possible.
+ * Ignores IE conditional comments, 
+ *
+ * * @author Jonathan Walsh 
+ */
+public class JSFastWhitespaceRemover implements Minifier {
+
+	public static final String NAME = "whitespace";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public void minify(Reader in, Writer out) throws IOException {
+		compress(in, out);
+	}
+
+	public void compress(final Reader in, final Writer out) throws IOException {
+		ParseState state = ParseState.TEXT_OK_SKIP_SPACE;
+		ParseState stateText = ParseState.TEXT_OK_SKIP_SPACE;
+		int c;
+		char prevLex = ' ';
+		int commentLength = 0;
+		int quote = -1;
+		boolean escaped = false;
+		while ((c = in.read()) != -1) {
+
+			if (c == '\r' || c == '\n')
+				c = '\n';
+			else if (c < ' ') {
+				continue;
+			}
+
+			switch (state) {
+			case QUOTE:
+				out.write(c);
+				if (escaped) {
+					escaped = false;
+				} else if (c == '\\') {
+					escaped = true;
+				} else if (quote == c) {
+					state = ParseState.TEXT_OK_SKIP_SPACE;
+				}
+				break;
+
+			case TEXT_OK_SKIP_SPACE:
+				if (c == ' '|| c=='\n') {
+					break;
+				} 
+
+			case TEXT_BREAK:
+				if (c == '\n') {
+					break;
+				} 
+
+			case TEXT:
+				if (c == '/') {
+					state = ParseState.SLASH;
+					if (prevLex == '(' || prevLex == ',' || prevLex == '=' || prevLex == ':' || prevLex == '['
+							|| prevLex == '!' || prevLex == '&' || prevLex == '|' || prevLex == '?' || prevLex == '{'
+							|| prevLex == '}' || prevLex == ';' || prevLex == '\n')
+						state = ParseState.MAY_REGULAR_EXPR;
+					break;
+				} else if (c == ' ' || c == '{' || c == ',' || c == ';' || c == ':' || c=='=' || 
+						   c == '(' || c == '[' || c == '!' || c == '&' || c == '|' || c=='?'
+						   ) 
+					state = ParseState.TEXT_OK_SKIP_SPACE;
+				else if (c == '\n')
+					state = ParseState.TEXT_BREAK;
+				else if (c == '\'' || c == '"') {
+					state = ParseState.QUOTE;
+					quote = c;
+					escaped = false;
+				} else
+					state = ParseState.TEXT;
+				out.write(c);
+				stateText=state;
+				break;
+
+			case STAR_IN_COMMENT:
+				if (c == '/')
+					state = stateText;
+				else if (c == '*')
+					state = ParseState.STAR_IN_COMMENT;
+				else
+					state = ParseState.STARTED_COMMENT;
+				break;
+
+			case MAY_REGULAR_EXPR:
+				if (c == '*') {
+					state = ParseState.STARTED_COMMENT;
+					commentLength = 0;
+				} else if (c == '/') {
+					state = ParseState.LINE_COMMENT;
+				} else if (c == '\n') {
+					state = ParseState.TEXT;
+					out.write(c);
+				} else {
+					state = ParseState.REGULAR_EXPR;
+					out.write('/');
+					out.write(c);
+				}
+				break;
+
+			case REGULAR_EXPR:
+				if (c == '\n') {
+					state = ParseState.TEXT;
+				}
+				out.write(c);
+				break;
+
+			case SLASH:
+				if (c == '*') {
+					state = ParseState.STARTED_COMMENT;
+					commentLength = 0;
+					break;
+				} else if (c == '/') {
+					state = ParseState.LINE_COMMENT;
+					break;
+				} else {
+					out.write('/');
+					out.write(c);
+					state = ParseState.TEXT;
+				}
+				break;
+
+			case STARTED_COMMENT:
+				if (c == '*')
+					state = ParseState.STAR_IN_COMMENT;
+				else if (commentLength == 0 && c == '@') {
+					out.write('/');
+					out.write('*');
+					out.write(c);
+					state = ParseState.CONDITIONAL_COMMENT;
+				}
+				commentLength++;
+				break;
+
+			case CONDITIONAL_COMMENT:
+				if (c == '*')
+					state = ParseState.CLOSING_STAR_IN_COND_COMMENT;
+				else
+					state = ParseState.CONDITIONAL_COMMENT;
+				out.write(c);
+				break;
+
+			case CLOSING_STAR_IN_COND_COMMENT:
+				if (c == '/')
+					state = stateText;
+				else if (c == '*')
+					state = ParseState.CLOSING_STAR_IN_COND_COMMENT;
+				else
+					state = ParseState.CONDITIONAL_COMMENT;
+				out.write(c);
+				break;
+
+			case LINE_COMMENT:
+				if (c == '\n')
+					state= ParseState.TEXT_OK_SKIP_SPACE;
+				break;
+
+			}
+			if (c != ' ')
+				prevLex = (char) c;
+		}
+	}
+
+	//States
+	enum ParseState {
+		TEXT,
+		TEXT_OK_SKIP_SPACE,
+		SLASH,
+		STARTED_COMMENT,
+		TAR_IN_COMMENT,
+		EXT_OK_SKIP_SPACE,
+		LINE_COMMENT,
+		TEXT_BREAK,
+		STAR_IN_COMMENT,
+		CONDITIONAL_COMMENT,
+		CLOSING_STAR_IN_COND_COMMENT,
+		QUOTE,
+		MAY_REGULAR_EXPR,
+		REGULAR_EXPR
+	}
+}
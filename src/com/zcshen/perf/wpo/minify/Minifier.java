@@ -0,0 +1,26 @@
+package com.zcshen.perf.wpo.minify;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Minifier engine, e.g. removes spaces, comments or other useless information from a resource.  
+ * Engines are registered by resource type in {@link MinifierRegistry}.
+ * 
+ * Known implementations: 
+ * {@link JSFastWhitespaceRemover},
+ * {@link YuiCssMinifier}
+ * 
+ * @author Malcolm
+ * 
+ */
+public interface Minifier {
+
+	/**
+	 * @return name of the engine, used to select it with the minifier tag property
+	 */
+	String getName();
+
+	void minify(Reader in, Writer out) throws IOException;
+}
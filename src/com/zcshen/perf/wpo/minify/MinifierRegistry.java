@@ -0,0 +1,74 @@
+package com.zcshen.perf.wpo.minify;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of minifier engines by resource type and name.  
+ * The first engine registered for a type is its default. 
+ * Custom engines could be registered at application startup.
+ * 
+ * @author Malcolm
+ * 
+ */
+public final class MinifierRegistry {
+
+	private static final Logger log = LoggerFactory.getLogger(MinifierRegistry.class);
+	public static final String TYPE_JS = "js";
+	public static final String TYPE_CSS = "css";
+
+	private static final Map<String, Map<String, GuardedMinifier>> minifiers = new ConcurrentHashMap<String, Map<String, GuardedMinifier>>();
+	private static final Map<String, String> defaultNames = new ConcurrentHashMap<String, String>();
+
+	static {
+		register(TYPE_JS, new JSFastWhitespaceRemover());
+		register(TYPE_CSS, new YuiCssMinifier());
+	}
+
+	private MinifierRegistry() {
+	}
+
+	public static synchronized void register(String type, Minifier minifier) {
+		Map<String, GuardedMinifier> engines = minifiers.get(type);
+		if (engines == null) {
+			engines = new ConcurrentHashMap<String, GuardedMinifier>();
+			minifiers.put(type, engines);
+			defaultNames.put(type, minifier.getName());
+		}
+		engines.put(minifier.getName(), new GuardedMinifier(minifier));
+	}
+
+	/**
+	 * @param type resource type, e.g. {@link #TYPE_JS}
+	 * @param name engine name, the default engine of the type is returned if blank or unknown
+	 * @return the engine, or null if no engine is registered for the type
+	 */
+	public static GuardedMinifier get(String type, String name) {
+		Map<String, GuardedMinifier> engines = minifiers.get(type);
+		if (engines == null) {
+			return null;
+		}
+		GuardedMinifier minifier = StringUtils.isBlank(name) ? null : engines.get(name);
+		if (minifier == null) {
+			if (StringUtils.isNotBlank(name)) {
+				log.warn("Unknown " + type + " minifier " + name + ", use default " + defaultNames.get(type));
+			}
+			minifier = engines.get(defaultNames.get(type));
+		}
+		return minifier;
+	}
+
+	/**
+	 * @param type resource type
+	 * @return engines of the type by name
+	 */
+	public static Map<String, GuardedMinifier> getMinifiers(String type) {
+		Map<String, GuardedMinifier> engines = minifiers.get(type);
+		return (engines == null) ? Collections.<String, GuardedMinifier> emptyMap() : Collections.unmodifiableMap(engines);
+	}
+}
@@ -0,0 +1,107 @@
+package com.zcshen.perf.wpo.minify;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of a minifier engine, to compare the size reduction and the speed of engines.
+ * Sizes are counted in chars.
+ * 
+ * @author Malcolm
+ * 
+ */
+public class MinifierStats {
+
+	private final AtomicLong invocations = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong inputSize = new AtomicLong();
+	private final AtomicLong outputSize = new AtomicLong();
+	private final AtomicLong nanos = new AtomicLong();
+
+	void success(long input, long output, long elapsedNanos) {
+		invocations.incrementAndGet();
+		inputSize.addAndGet(input);
+		outputSize.addAndGet(output);
+		nanos.addAndGet(elapsedNanos);
+	}
+
+	void failure() {
+		invocations.incrementAndGet();
+		failures.incrementAndGet();
+	}
+
+	void timeout() {
+		invocations.incrementAndGet();
+		timeouts.incrementAndGet();
+	}
+
+	void skip() {
+		skipped.incrementAndGet();
+	}
+
+	void reject() {
+		rejected.incrementAndGet();
+	}
+
+	public long getInvocations() {
+		return invocations.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	/**
+	 * @return number of resources left unminified since the circuit breaker was open
+	 */
+	public long getSkipped() {
+		return skipped.get();
+	}
+
+	/**
+	 * @return number of resources left unminified since all minifier threads were busy
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	public long getInputSize() {
+		return inputSize.get();
+	}
+
+	public long getOutputSize() {
+		return outputSize.get();
+	}
+
+	/**
+	 * @return ratio of the removed size to the input size of successful invocations
+	 */
+	public double getReduction() {
+		long input = inputSize.get();
+		return (input == 0) ? 0 : 1 - (double) outputSize.get() / input;
+	}
+
+	/**
+	 * @return chars minified per millisecond
+	 */
+	public double getThroughput() {
+		long elapsed = nanos.get();
+		return (elapsed == 0) ? 0 : (double) inputSize.get() * TimeUnit.MILLISECONDS.toNanos(1) / elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return "invocations=" + getInvocations() + ", failures=" + getFailures() + ", timeouts=" + getTimeouts()
+				+ ", skipped=" + getSkipped() + ", rejected=" + getRejected()
+				+ ", input=" + getInputSize() + ", output=" + getOutputSize()
+				+ ", reduction=" + String.format("%.1f%%", getReduction() * 100)
+				+ ", throughput=" + String.format("%.1f", getThroughput()) + " chars/ms";
+	}
+}
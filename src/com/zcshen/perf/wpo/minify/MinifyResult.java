@@ -0,0 +1,53 @@
+package com.zcshen.perf.wpo.minify;
+
+/**
+ * Result of a guarded minification.  
+ * If the engine failed, timed out or was not invoked, the result is a fallback which holds the content as is.
+ * A fallback is temporary, it should neither be cached nor shared, so the content is minified again later, 
+ * though not before {@link #getRetryAfter()}.
+ * 
+ * @author Malcolm
+ * 
+ */
+public class MinifyResult {
+
+	private final String content;
+	private final boolean fallback;
+	private final long retryAfter;
+
+	MinifyResult(String content, boolean fallback, long retryAfter) {
+		this.content = content;
+		this.fallback = fallback;
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * @param content content which does not need to be minified
+	 * @return a final result holding the content as is
+	 */
+	public static MinifyResult unminified(String content) {
+		return new MinifyResult(content, false, 0);
+	}
+
+	/**
+	 * @return minified content, or the original content if this is a fallback
+	 */
+	public String getContent() {
+		return content;
+	}
+
+	/**
+	 * @return whether the content could not be minified this time
+	 */
+	public boolean isFallback() {
+		return fallback;
+	}
+
+	/**
+	 * @return for a fallback, time in milliseconds before which minifying the content again would fail as well,
+	 * e.g. while the circuit breaker is open
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+}
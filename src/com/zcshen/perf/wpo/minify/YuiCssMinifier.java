@@ -0,0 +1,28 @@
+package com.zcshen.perf.wpo.minify;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import com.yahoo.platform.yui.compressor.CssCompressor;
+
+/**
+ * CSS minifier backed by YUI compressor.
+ * 
+ * @author Malcolm
+ * 
+ */
+public class YuiCssMinifier implements Minifier {
+
+	public static final String NAME = "yui";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public void minify(Reader in, Writer out) throws IOException {
+		new CssCompressor(in).compress(out, 0);
+	}
+}
@@ -0,0 +1,113 @@
+package com.zcshen.perf.wpo.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes optimized artifacts atomically, so a reader never sees an empty or partially written artifact.  
+ * An artifact is built in a work file next to it, synced to disk, and renamed onto the artifact in one step.
+ * 
+ * Previous versions are not kept by the publisher. A reader which has opened the artifact before the rename
+ * keeps reading the previous version, since on POSIX file systems an open file stays valid after it is replaced,
+ * and a reader which opens it after the rename gets the new version, so no reader sees a mix of both.
+ * On Windows the rename fails while the artifact is opened by a reader which does not allow deletion, 
+ * the build fails then and the previous version is kept.
+ * 
+ * @author Malcolm
+ * 
+ */
+public final class ArtifactPublisher {
+
+	private static final Logger log = LoggerFactory.getLogger(ArtifactPublisher.class);
+	public static final String WORK_FILE_SUFFIX = ".tmp";
+
+	private ArtifactPublisher() {
+	}
+
+	/**
+	 * Creates an empty work file in the directory of the artifact, so it could be renamed onto the artifact.
+	 * 
+	 * @param target the artifact
+	 * @return the work file
+	 * @throws IOException
+	 */
+	public static File createWorkFile(File target) throws IOException {
+		File directory = target.getAbsoluteFile().getParentFile();
+		FileUtils.forceMkdir(directory);
+		File workFile = new File(directory, "." + target.getName() + "." + UUID.randomUUID() + WORK_FILE_SUFFIX);
+		if (!workFile.createNewFile()) {
+			throw new IOException("Cannot create work file " + workFile);
+		}
+		return workFile;
+	}
+
+	/**
+	 * Publishes the work file as the new version of the artifact.  
+	 * The work file is owned by the publisher afterwards, it is either renamed or deleted.
+	 * 
+	 * @param workFile completely written work file
+	 * @param target the artifact
+	 * @throws IOException
+	 */
+	public static void publish(File workFile, File target) throws IOException {
+		try {
+			sync(workFile);
+		} catch (IOException e) {
+			FileUtils.deleteQuietly(workFile);
+			throw e;
+		}
+
+		replace(workFile, target.getAbsoluteFile());
+	}
+
+	private static void replace(File workFile, File target) throws IOException {
+		try {
+			try {
+				Files.move(workFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(workFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			FileUtils.deleteQuietly(workFile);
+			throw e;
+		}
+		syncDirectory(target.getParentFile());
+	}
+
+	private static void sync(File file) throws IOException {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "rw");
+			raf.getChannel().force(true);
+		} finally {
+			IOUtils.closeQuietly(raf);
+		}
+	}
+
+	private static void syncDirectory(File directory) {
+		// makes the rename durable, not supported on every platform.
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+			channel.force(true);
+		} catch (IOException e) {
+			if (log.isDebugEnabled()) {
+				log.debug("Cannot sync directory " + directory, e);
+			}
+		} finally {
+			IOUtils.closeQuietly(channel);
+		}
+	}
+}
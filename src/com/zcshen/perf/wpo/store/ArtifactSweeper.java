@@ -0,0 +1,245 @@
+package com.zcshen.perf.wpo.store;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes optimized artifacts which are no longer referenced.  
+ * An artifact is live if its path is in the given live paths, e.g. the merged resource paths of the optimizer tags.
+ * Other artifacts in the watched directories are deleted once they are unused for longer than the grace period,
+ * and if the artifacts still take more than the disk quota, the least recently used unreferenced ones are deleted as well.
+ * The grace period counts from the latest of: the artifact was built, it was last seen live, and this sweeper was created.
+ * So after a restart, artifacts still referenced by pages cached elsewhere, e.g. by other nodes or a CDN, are kept for a grace period.
+ * Work files left behind by failed builds are removed the same way.
+ * 
+ * @author Malcolm
+ * 
+ */
+public class ArtifactSweeper implements Runnable {
+
+	private static final Logger log = LoggerFactory.getLogger(ArtifactSweeper.class);
+
+	// never delete artifacts younger than this, they may be published but not registered as live yet.
+	private static final long MIN_AGE = TimeUnit.MINUTES.toMillis(1);
+
+	private final Collection<String> livePaths;
+	private final String[] prefixes;
+	private final Set<File> directories = new CopyOnWriteArraySet<File>();
+	private final long startTime;
+	private final Map<String, Long> lastReferenced = new ConcurrentHashMap<String, Long>();
+	private long gracePeriod = TimeUnit.DAYS.toMillis(1);
+	private long quota = 0;
+	private ScheduledExecutorService executor;
+
+	/**
+	 * @param livePaths paths of live artifacts, only the file name is compared
+	 * @param prefixes file name prefixes of artifacts, other files are never deleted
+	 */
+	public ArtifactSweeper(Collection<String> livePaths, String... prefixes) {
+		this(System.currentTimeMillis(), livePaths, prefixes);
+	}
+
+	/**
+	 * @param startTime time the artifacts of previous runs are considered last used
+	 * @param livePaths paths of live artifacts, only the file name is compared
+	 * @param prefixes file name prefixes of artifacts, other files are never deleted
+	 */
+	ArtifactSweeper(long startTime, Collection<String> livePaths, String... prefixes) {
+		this.startTime = startTime;
+		this.livePaths = livePaths;
+		this.prefixes = prefixes;
+	}
+
+	public void watch(File directory) {
+		directories.add(directory.getAbsoluteFile());
+	}
+
+	public synchronized void start(long interval) {
+		if (executor == null && interval > 0) {
+			executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "wpo-artifact-sweeper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.scheduleWithFixedDelay(this, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			sweep();
+		} catch (Throwable t) {
+			// keep the scheduled sweeping alive
+			log.error("Fail to sweep optimized artifacts", t);
+		}
+	}
+
+	public void sweep() {
+		long now = System.currentTimeMillis();
+		Set<String> liveNames = getLiveNames();
+		for (String liveName : liveNames) {
+			lastReferenced.put(liveName, now);
+		}
+
+		List<File> unreferenced = new ArrayList<File>();
+		Map<File, Long> listedModified = new HashMap<File, Long>();
+		long usage = 0;
+		int deleted = 0;
+		for (File directory : directories) {
+			File[] files = directory.listFiles();
+			if (files == null) {
+				continue;
+			}
+			for (File file : files) {
+				String name = file.getName();
+				if (!file.isFile() || !isArtifact(name)) {
+					continue;
+				}
+				long lastModified = file.lastModified();
+				long age = now - getLastUsed(name, lastModified);
+				boolean settled = now - lastModified > MIN_AGE;
+				if (liveNames.contains(name)) {
+					usage += file.length();
+				} else if (age > gracePeriod && settled && deleteIfUnreferenced(file, lastModified)) {
+					deleted++;
+				} else {
+					usage += file.length();
+					if (settled) {
+						unreferenced.add(file);
+						listedModified.put(file, lastModified);
+					}
+				}
+			}
+		}
+
+		if (quota > 0 && usage > quota) {
+			// least recently used first
+			final Map<File, Long> lastUsed = new HashMap<File, Long>();
+			for (File file : unreferenced) {
+				lastUsed.put(file, getLastUsed(file.getName(), listedModified.get(file)));
+			}
+			Collections.sort(unreferenced, new Comparator<File>() {
+				@Override
+				public int compare(File f1, File f2) {
+					long m1 = lastUsed.get(f1);
+					long m2 = lastUsed.get(f2);
+					return (m1 < m2) ? -1 : ((m1 == m2) ? 0 : 1);
+				}
+			});
+			for (File file : unreferenced) {
+				if (usage <= quota) {
+					break;
+				}
+				long length = file.length();
+				if (deleteIfUnreferenced(file, listedModified.get(file))) {
+					usage -= length;
+					deleted++;
+				}
+			}
+			if (usage > quota) {
+				log.warn("Optimized artifacts take " + usage + " bytes, more than quota " + quota + " bytes");
+			}
+		}
+
+		if (log.isInfoEnabled() && deleted > 0) {
+			log.info("Deleted " + deleted + " unreferenced optimized artifacts");
+		}
+	}
+
+	private Set<String> getLiveNames() {
+		Set<String> liveNames = new HashSet<String>();
+		for (String livePath : livePaths) {
+			liveNames.add(FilenameUtils.getName(livePath));
+		}
+		return liveNames;
+	}
+
+	/**
+	 * An artifact is used since it was built, since it was last seen live, 
+	 * and since this process started, as artifacts of the previous run may still be referenced by cached pages.
+	 */
+	private long getLastUsed(String name, long lastModified) {
+		Long referenced = lastReferenced.get(name);
+		return Math.max(Math.max(lastModified, startTime), (referenced == null) ? 0 : referenced);
+	}
+
+	/**
+	 * Deletes the artifact unless it became live or was rebuilt since it was listed.
+	 */
+	private boolean deleteIfUnreferenced(File file, long listedModified) {
+		if (getLiveNames().contains(file.getName()) || file.lastModified() != listedModified) {
+			return false;
+		}
+		boolean deleted = file.delete();
+		if (deleted) {
+			lastReferenced.remove(file.getName());
+			if (log.isDebugEnabled()) {
+				log.debug("Deleted unreferenced artifact " + file);
+			}
+		} else if (file.exists()) {
+			log.warn("Cannot delete unreferenced artifact " + file);
+		}
+		return deleted;
+	}
+
+	private boolean isArtifact(String name) {
+		for (String prefix : prefixes) {
+			if (name.startsWith(prefix)
+					|| (name.startsWith("." + prefix) && name.endsWith(ArtifactPublisher.WORK_FILE_SUFFIX))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public long getGracePeriod() {
+		return gracePeriod;
+	}
+
+	/**
+	 * @param gracePeriod time in milliseconds an unreferenced artifact is kept
+	 */
+	public void setGracePeriod(long gracePeriod) {
+		this.gracePeriod = gracePeriod;
+	}
+
+	public long getQuota() {
+		return quota;
+	}
+
+	/**
+	 * @param quota disk usage in bytes of the artifacts, 0 means no limit
+	 */
+	public void setQuota(long quota) {
+		this.quota = quota;
+	}
+}
@@ -0,0 +1,59 @@
+package com.zcshen.perf.wpo.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Store of optimized bundles shared by the nodes of a cluster, so that a bundle is built once and reused by every node.  
+ * Bundles are identified by their context relative path, e.g. /js/Opt_static_1234.js.
+ * The path is a digest of the ordered referenced resource paths, so it is the same on every node.
+ * Since the content of the resources may differ between nodes, e.g. during a rolling update, 
+ * a bundle is stored and loaded together with a fingerprint of its input, and only loaded for the same fingerprint.
+ * 
+ * Known implementations: 
+ * {@link LocalBundleStore},
+ * {@link SharedDirectoryBundleStore}
+ * 
+ * @author Malcolm
+ * 
+ */
+public interface BundleStore {
+
+	/**
+	 * @return whether bundles are shared with other nodes, if not {@link #load(String, File, String)} never finds a bundle
+	 */
+	boolean isShared();
+
+	/**
+	 * Copies a bundle built before into the target file.
+	 * 
+	 * @param bundlePath context relative path of the bundle
+	 * @param target local file to write the bundle to
+	 * @param fingerprint digest of the input of the bundle, bundles built from another input are not loaded
+	 * @return true if the bundle was found and copied, false if it has to be built
+	 * @throws IOException
+	 */
+	boolean load(String bundlePath, File target, String fingerprint) throws IOException;
+
+	/**
+	 * Publishes a bundle built by this node, so other nodes could load it.
+	 * 
+	 * @param bundlePath context relative path of the bundle
+	 * @param source local file of the bundle
+	 * @param fingerprint digest of the input of the bundle
+	 * @throws IOException
+	 */
+	void store(String bundlePath, File source, String fingerprint) throws IOException;
+
+	/**
+	 * Acquires the exclusive right to build a bundle, so only one node builds it at a time.
+	 * The lock is released by closing the returned object.
+	 * Implementations should give up after a bounded wait, the caller then builds the bundle without the lock.
+	 * 
+	 * @param bundlePath context relative path of the bundle
+	 * @return the acquired lock
+	 * @throws IOException if the lock cannot be acquired in time
+	 */
+	Closeable lock(String bundlePath) throws IOException;
+}
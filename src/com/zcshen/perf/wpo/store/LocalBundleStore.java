@@ -0,0 +1,42 @@
+package com.zcshen.perf.wpo.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Bundle store which shares nothing, every node builds its own bundles.  
+ * This is the default.
+ * 
+ * @author Malcolm
+ * 
+ */
+public class LocalBundleStore implements BundleStore {
+
+	public static final LocalBundleStore INSTANCE = new LocalBundleStore();
+
+	private static final Closeable NO_LOCK = new Closeable() {
+		@Override
+		public void close() throws IOException {
+		}
+	};
+
+	@Override
+	public boolean isShared() {
+		return false;
+	}
+
+	@Override
+	public boolean load(String bundlePath, File target, String fingerprint) throws IOException {
+		return false;
+	}
+
+	@Override
+	public void store(String bundlePath, File source, String fingerprint) throws IOException {
+	}
+
+	@Override
+	public Closeable lock(String bundlePath) throws IOException {
+		return NO_LOCK;
+	}
+}
@@ -0,0 +1,187 @@
+package com.zcshen.perf.wpo.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bundle store on a directory shared by all nodes, e.g. a NFS mount.  
+ * Bundles are published with {@link ArtifactPublisher}, so a node never loads a partially written bundle.
+ * Building is serialized with a file lock on a .lock file next to the bundle, 
+ * and with an in-process lock since file locks are held on behalf of the whole JVM.
+ * Waiting for the lock is bounded, so a hung node or a stale lock only makes the others build the bundle themselves.
+ * 
+ * Every version of a bundle is stored under its fingerprint, e.g. /js/Opt_static_1234.js.5678, 
+ * so nodes running different releases never overwrite or load the bundles of each other, 
+ * and file dates, which are unreliable across nodes, are not relied upon.
+ * Nothing removes bundles of previous versions nor .lock files from the directory, 
+ * clean it up on a release or with a scheduled job, e.g. deleting files not accessed for a week.
+ * 
+ * @author Malcolm
+ * 
+ */
+public class SharedDirectoryBundleStore implements BundleStore {
+
+	private static final Logger log = LoggerFactory.getLogger(SharedDirectoryBundleStore.class);
+	private static final String LOCK_FILE_SUFFIX = ".lock";
+	private static final ConcurrentMap<String, ReentrantLock> processLocks = new ConcurrentHashMap<String, ReentrantLock>();
+
+	private static final long DEFAULT_LOCK_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+	private static final long LOCK_RETRY_INTERVAL = 100;
+
+	private final File directory;
+	private final long lockTimeout;
+
+	public SharedDirectoryBundleStore(File directory) {
+		this(directory, DEFAULT_LOCK_TIMEOUT);
+	}
+
+	/**
+	 * @param directory shared directory
+	 * @param lockTimeout milliseconds to wait for the build lock of a bundle
+	 */
+	public SharedDirectoryBundleStore(File directory, long lockTimeout) {
+		this.directory = directory;
+		this.lockTimeout = lockTimeout;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	@Override
+	public boolean isShared() {
+		return true;
+	}
+
+	@Override
+	public boolean load(String bundlePath, File target, String fingerprint) throws IOException {
+		File bundle = getBundleFile(bundlePath, fingerprint);
+		if (!bundle.isFile()) {
+			return false;
+		}
+
+		copyAndPublish(bundle, target);
+		if (log.isDebugEnabled()) {
+			log.debug("Bundle " + bundlePath + " loaded from " + bundle);
+		}
+		return true;
+	}
+
+	@Override
+	public void store(String bundlePath, File source, String fingerprint) throws IOException {
+		File bundle = getBundleFile(bundlePath, fingerprint);
+		copyAndPublish(source, bundle);
+		if (log.isDebugEnabled()) {
+			log.debug("Bundle " + bundlePath + " stored to " + bundle);
+		}
+	}
+
+	@Override
+	public Closeable lock(String bundlePath) throws IOException {
+		File lockFile = new File(new File(directory, bundlePath).getPath() + LOCK_FILE_SUFFIX);
+		FileUtils.forceMkdir(lockFile.getParentFile());
+
+		String key = lockFile.getCanonicalPath();
+		ReentrantLock processLock = processLocks.get(key);
+		if (processLock == null) {
+			ReentrantLock newLock = new ReentrantLock();
+			processLock = processLocks.putIfAbsent(key, newLock);
+			if (processLock == null) {
+				processLock = newLock;
+			}
+		}
+
+		long deadline = System.currentTimeMillis() + lockTimeout;
+		try {
+			if (!processLock.tryLock(lockTimeout, TimeUnit.MILLISECONDS)) {
+				throw new IOException("Timed out waiting for lock " + lockFile);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for lock " + lockFile);
+		}
+
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(lockFile, "rw");
+			FileLock fileLock = tryLock(file, deadline);
+			if (fileLock == null) {
+				throw new IOException("Timed out waiting for lock " + lockFile + ", it may be held by another node");
+			}
+			return new BundleLock(processLock, fileLock, file);
+		} catch (IOException e) {
+			IOUtils.closeQuietly(file);
+			processLock.unlock();
+			throw e;
+		} catch (RuntimeException e) {
+			IOUtils.closeQuietly(file);
+			processLock.unlock();
+			throw e;
+		}
+	}
+
+	private static FileLock tryLock(RandomAccessFile file, long deadline) throws IOException {
+		while (true) {
+			FileLock fileLock = file.getChannel().tryLock();
+			if (fileLock != null || System.currentTimeMillis() >= deadline) {
+				return fileLock;
+			}
+			try {
+				Thread.sleep(LOCK_RETRY_INTERVAL);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted waiting for lock");
+			}
+		}
+	}
+
+	private File getBundleFile(String bundlePath, String fingerprint) {
+		return new File(directory, bundlePath + '.' + fingerprint);
+	}
+
+	private static void copyAndPublish(File source, File target) throws IOException {
+		File workFile = ArtifactPublisher.createWorkFile(target);
+		try {
+			// do not preserve the date, the age of the copy is used to sweep it.
+			FileUtils.copyFile(source, workFile, false);
+		} catch (IOException e) {
+			FileUtils.deleteQuietly(workFile);
+			throw e;
+		}
+		ArtifactPublisher.publish(workFile, target);
+	}
+
+	private static class BundleLock implements Closeable {
+		private final ReentrantLock processLock;
+		private final FileLock fileLock;
+		private final RandomAccessFile file;
+
+		BundleLock(ReentrantLock processLock, FileLock fileLock, RandomAccessFile file) {
+			this.processLock = processLock;
+			this.fileLock = fileLock;
+			this.file = file;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				fileLock.release();
+			} finally {
+				IOUtils.closeQuietly(file);
+				processLock.unlock();
+			}
+		}
+	}
+}
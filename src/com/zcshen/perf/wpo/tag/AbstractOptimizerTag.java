@@ -6,20 +6,30 @@ import static org.apache.commons.lang.StringUtils.trimToEmpty;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
-import java.util.ListIterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletContext;
@@ -27,20 +37,34 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.jsp.JspException;
 import javax.servlet.jsp.tagext.BodyTagSupport;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.DataNode;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
 import org.jsoup.parser.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.zcshen.perf.wpo.minify.GuardedMinifier;
+import com.zcshen.perf.wpo.minify.MinifierRegistry;
+import com.zcshen.perf.wpo.minify.MinifyResult;
+import com.zcshen.perf.wpo.store.ArtifactPublisher;
+import com.zcshen.perf.wpo.store.ArtifactSweeper;
+import com.zcshen.perf.wpo.store.BundleStore;
+import com.zcshen.perf.wpo.store.LocalBundleStore;
+import com.zcshen.perf.wpo.store.SharedDirectoryBundleStore;
 
 /**
  * If server restarts, the merged resource files would be regenerated.  
- * However, if number of referenced files or file name changes, the merged file name would be changed as well.
+ * With sharedDir, a restarted node loads the bundle another node built instead, 
+ * as long as the content of every referenced file and the tag settings are the same.
+ * However, if number, order or names of referenced files change, the merged file name would be changed as well.
  * E.g., in a.jsp, it includes b.js.  If you changed the content of b.js and restart server, the merged file name would not be changed.
  * If you include one more js, c.js, the merged file name would be changed.
  * TODO considering using other strategy to be aware of file content change. 
@@ -55,11 +79,26 @@ import org.slf4j.LoggerFactory;
  * <li>exclude: keyword to exclude from optimization. Use comma to separate multiple keywords.
  * <li>charset: charset of the resource file to optimize. Default is UTF-8.
  * <li>minify: whether to minify the resources. Minify usually means removing spaces, comments or other useless information.
+ * <li>minifyInline: whether to minify inline script or style blocks in the tag body. Default is false, it only applies when minify is true.
+ * <li>minifier: name of the minifier engine, see {@link MinifierRegistry}. Default is the first engine registered for the resource type.
+ * <li>minifyTimeout: milliseconds a minifier could take for a resource, the resource is not minified if it takes longer. Default is 10000.
  * <li>compress: whether to compress the resources. Default is GZip.
  * <li>cache: whether to cache optimized html code for performance concern. Default is true.
  * <li>useServlet: whether to use servlet to return optimized resources other than static files.
+ * <li>sharedDir: directory shared by the nodes of a cluster to store optimized resources in, see {@link SharedDirectoryBundleStore}. 
+ * If not set, every node builds its own optimized resources.
  * </ul>
  * 
+ * <ul>
+ * Optimized resources no longer referenced are deleted in background, see {@link ArtifactSweeper}. 
+ * Context init parameters:
+ * <li>wpo.sweeper.interval: minutes between two sweeps. Default is 60, 0 disables sweeping.
+ * <li>wpo.sweeper.gracePeriod: minutes an unreferenced optimized resource is kept. Default is 1440.
+ * <li>wpo.sweeper.quota: disk quota in MB of the optimized resources. Default is 0, which means no limit.
+ * </ul>
+ * Register {@link OptimizerContextListener} in web.xml to stop the sweeper when the web application is stopped,
+ * otherwise its thread and the class loader of the web application are leaked on every redeploy.
+ * 
  * @author Malcolm
  * 
  */
@@ -71,28 +110,61 @@ public abstract class AbstractOptimizerTag extends BodyTagSupport {
 	public static final String SERVLET_MODE_FILE_PREFIX = "Opt_servlet_"; // TODO not supported yet
 	private static final String NEW_LINE = System.getProperty("line.separator");
 
-	private static Map<Set<String>, String> mergedResourcePaths = new ConcurrentHashMap<Set<String>, String>();
+	// keyed by the ordered resource paths, since the order of the resources matters in the merged file.
+	private static Map<List<String>, String> mergedResourcePaths = new ConcurrentHashMap<List<String>, String>();
+	// resources built unminified after a minifier failure, with the time to try minifying them again.
+	private static Map<List<String>, Long> fallbackRetryTimes = new ConcurrentHashMap<List<String>, Long>();
 	private static Map<String, String> cachedOptBody = new ConcurrentHashMap<String, String>();
+	private static Map<String, String> cachedInlineContent = new ConcurrentHashMap<String, String>();
+	private static final int MAX_CACHED_INLINE_BLOCKS = 1024;
+	private static Map<String, BundleStore> sharedBundleStores = new ConcurrentHashMap<String, BundleStore>();
+	private static ArtifactSweeper sweeper = new ArtifactSweeper(mergedResourcePaths.values(), STATIC_MODE_FILE_PREFIX,
+			SERVLET_MODE_FILE_PREFIX);
 	private static ServletContext context;
 
 	private Set<String> excludeSet = new HashSet<String>();
 	private boolean enabled = true;
 	private String charset = "UTF-8"; // default charset is UTF-8
 	private boolean minify = true;
+	private boolean minifyInline = false;
+	private String minifier;
+	private long minifyTimeout = 10000;
 	private boolean compress = false;
 	private boolean cache = true;
 	private boolean useServlet = false;
+	private String sharedDir;
+	private boolean completelyOptimized = true;
+	private long fallbackRetryAfter;
 
 	// TODO consider case: absolute path in src
 
 	@Override
 	public int doStartTag() throws JspException {
 		if (context == null) {
-			context = pageContext.getServletContext();
+			init(pageContext.getServletContext());
 		}
 		return (enabled) ? EVAL_BODY_BUFFERED : EVAL_BODY_INCLUDE;
 	}
 
+	static synchronized void init(ServletContext servletContext) {
+		if (context == null) {
+			long interval = NumberUtils.toLong(servletContext.getInitParameter("wpo.sweeper.interval"), 60);
+			long gracePeriod = NumberUtils.toLong(servletContext.getInitParameter("wpo.sweeper.gracePeriod"), 1440);
+			long quota = NumberUtils.toLong(servletContext.getInitParameter("wpo.sweeper.quota"), 0);
+			sweeper.setGracePeriod(TimeUnit.MINUTES.toMillis(gracePeriod));
+			sweeper.setQuota(quota * 1024 * 1024);
+			sweeper.start(TimeUnit.MINUTES.toMillis(interval));
+			context = servletContext;
+		}
+	}
+
+	/**
+	 * Stops sweeping optimized resources, called when the web application is stopped.
+	 */
+	public static void stopSweeper() {
+		sweeper.stop();
+	}
+
 	@Override
 	public int doEndTag() throws JspException {
 		if (enabled) {
@@ -120,7 +192,7 @@ public abstract class AbstractOptimizerTag extends BodyTagSupport {
 							outputBody = optimize(outputBody);
 						}
 
-						if (cache) {
+						if (cache && completelyOptimized) {
 							// put to cache
 							cachedOptBody.put(servletPath, outputBody);
 						}
@@ -169,38 +241,94 @@ public abstract class AbstractOptimizerTag extends BodyTagSupport {
         return result;
     }
 	private String optimize(String body) {
+		completelyOptimized = true;
 		Document doc = Jsoup.parseBodyFragment(body);
 		Element element = doc.body();
 		OptTag stdOptTag = getStandardOptTag();
 
-		ListIterator<Element> scripts = element.getElementsByTag(stdOptTag.getTagName()).listIterator();
-		if (scripts != null) {
-			Set<String> resourcePathToOptimize = new LinkedHashSet<String>();
-			Element mergedElement = null;
-
-			while (scripts.hasNext()) {
-				Element script = scripts.next();
-				OptTag optTag = adaptToOptTag(script);
-				String src = script.attr(stdOptTag.getSrcAttributeName());
-				if (needOptimize(optTag) && !isExcluded(src)) {
-					resourcePathToOptimize.add(src);
-					if (mergedElement == null) {
-						mergedElement = createElement(stdOptTag.getTagName(), stdOptTag.getAttributes());
-						script.before(mergedElement);
-					}
+		Set<String> resourcePathToOptimize = new LinkedHashSet<String>();
+		List<Element> scriptsToOptimize = new ArrayList<Element>();
+		for (Element script : element.getElementsByTag(stdOptTag.getTagName())) {
+			OptTag optTag = adaptToOptTag(script);
+			String src = script.attr(stdOptTag.getSrcAttributeName());
+			if (needOptimize(optTag) && !isExcluded(src)) {
+				resourcePathToOptimize.add(src);
+				scriptsToOptimize.add(script);
+			}
+		}
+
+		if (!scriptsToOptimize.isEmpty()) {
+			String mergedResourceSrc = getMergedResourcePath(resourcePathToOptimize);
+			if (mergedResourceSrc == null) {
+				// keep the original tags, and try again on the next request.
+				completelyOptimized = false;
+			} else {
+				Element mergedElement = createElement(stdOptTag.getTagName(), stdOptTag.getAttributes());
+				mergedElement.attr(stdOptTag.getSrcAttributeName(), mergedResourceSrc);
+				scriptsToOptimize.get(0).before(mergedElement);
+				for (Element script : scriptsToOptimize) {
 					script.remove();
 				}
 			}
+		}
 
-			if (mergedElement != null) {
-				String mergedResourceSrc = getMergedResourcePath(resourcePathToOptimize);
-				mergedElement.attr(stdOptTag.getSrcAttributeName(), mergedResourceSrc);
+		if (minify && minifyInline) {
+			for (Element inline : element.getAllElements()) {
+				if (needOptimizeInline(adaptToOptTag(inline))) {
+					optimizeInline(inline);
+				}
 			}
 		}
 
 		return element.html();
 	}
 
+	/**
+	 * Minifies the data of an inline script or style block in place.
+	 * Minified blocks are cached by content hash, so the same block included by several pages is minified once.
+	 * 
+	 * @param element
+	 */
+	private void optimizeInline(Element element) {
+		for (Node node : element.childNodes()) {
+			if (node instanceof DataNode) {
+				DataNode data = (DataNode) node;
+				String content = data.getWholeData();
+				if (isBlank(content)) {
+					continue;
+				}
+
+				String key = cache ? this.getClass().getSimpleName() + digest(content) : null;
+				String minified = (key == null) ? null : cachedInlineContent.get(key);
+				if (minified == null) {
+					long startTime = System.currentTimeMillis();
+					MinifyResult result = minifyInline(content);
+					minified = result.getContent();
+					if (result.isFallback()) {
+						// do not keep the unminified block, nor the page containing it.
+						completelyOptimized = false;
+					} else if (key != null && cachedInlineContent.size() < MAX_CACHED_INLINE_BLOCKS) {
+						cachedInlineContent.put(key, minified);
+					}
+					if (log.isDebugEnabled()) {
+						log.debug("Minifying inline " + element.tagName() + " block takes: " + (System.currentTimeMillis() - startTime));
+					}
+				}
+				data.setWholeData(minified);
+			}
+		}
+	}
+
+	private String digest(String content) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			return toHex(md.digest(content.getBytes(charset)));
+		} catch (Exception e) {
+			// MD5 and the tag charset are always available in practice, fall back to the weaker String hash.
+			return content.length() + "_" + content.hashCode();
+		}
+	}
+
 	private OptTag adaptToOptTag(Element element) {
 		OptTag optTag = new OptTag();
 		optTag.setTagName(element.tagName());
@@ -229,7 +357,21 @@ public abstract class AbstractOptimizerTag extends BodyTagSupport {
 		return context.getRealPath(jsRelativePath);
 	}
 
-	protected String merge(Set<String> resourcePaths) {
+	/**
+	 * Merges the resources into the target file.  
+	 * Resources which cannot be read are skipped, a failure to write the target aborts the build.
+	 * 
+	 * @param resourcePaths resources to merge
+	 * @param target file to write
+	 * @throws IOException
+	 */
+	protected void merge(Set<String> resourcePaths, File target) throws IOException {
+		if (!minify && isByteMergeSupported()) {
+			// content is not changed, so it is not necessary to decode it.
+			mergeBytes(resourcePaths, target);
+			return;
+		}
+
 		long startTime = System.currentTimeMillis();
 		StringBuilder mergedContent = new StringBuilder(8192);
 		for (String src : resourcePaths) {
@@ -248,76 +390,161 @@ public abstract class AbstractOptimizerTag extends BodyTagSupport {
 			}
 		}
 
-		String mergedFileName = getMergedFileRelativePath(resourcePaths);
-		String mergedFileRealPath = getRealPath(mergedFileName);
 		BufferedWriter fileWriter = null;
 		try {
-			fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mergedFileRealPath), charset));
+			fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target), charset));
 			fileWriter.write(mergedContent.toString());
-		} catch (IOException e) {
-			log.warn("Cannot write file " + mergedFileRealPath, e);
+			fileWriter.close();
 		} finally {
 			IOUtils.closeQuietly(fileWriter);
 			if (log.isDebugEnabled()) {
-				log.debug("Merging " + mergedFileName + " takes: " + (System.currentTimeMillis() - startTime));
+				log.debug("Merging " + target + " takes: " + (System.currentTimeMillis() - startTime));
 			}
 		}
+	}
 
-		/*String mergedFileName = getMergedFileRelativePath(resourcePaths);
-		String mergedFileRealPath = getRealPath(mergedFileName);
-        OutputStream os = null;
-        
-        try {
-        	os = new FileOutputStream(mergedFileRealPath);
-        	IOUtils.closeQuietly(os);
-			os = new BufferedOutputStream(new FileOutputStream(mergedFileRealPath, true));
-		} catch (FileNotFoundException e) {
-			log.error("Cannot write file " + mergedFileRealPath, e);
-		}
-        
+	/**
+	 * Concatenates the resources with {@link FileChannel#transferTo},
+	 * without decoding and encoding the content.  
+	 * As the char based merge, a line separator is appended to every resource which does not end with a new line.
+	 * 
+	 * @param resourcePaths resources to merge
+	 * @param target file to write
+	 * @throws IOException
+	 */
+	protected void mergeBytes(Set<String> resourcePaths, File target) throws IOException {
+		long startTime = System.currentTimeMillis();
+		ByteBuffer separator = ByteBuffer.wrap(NEW_LINE.getBytes(charset));
+		ByteBuffer lastByte = ByteBuffer.allocate(1);
+		FileOutputStream out = null;
 		try {
+			out = new FileOutputStream(target);
+			FileChannel outChannel = out.getChannel();
 			for (String src : resourcePaths) {
 				String realPath = getRealPath(src);
-		        InputStream is = null;
+				FileInputStream in = null;
 				try {
-					is = new BufferedInputStream(new FileInputStream(realPath));
-					IOUtils.copy(is, os);
-				} catch (IOException e) {
-					log.error("Cannot read or write file", e);
+					// as the char based merge, resources which cannot be resolved or read are skipped.
+					in = new FileInputStream(realPath);
+				} catch (Exception e) {
+					log.warn("Cannot read file " + realPath + " of " + src, e);
+					continue;
+				}
+
+				try {
+					FileChannel inChannel = in.getChannel();
+					long size = inChannel.size();
+					long position = 0;
+					while (position < size) {
+						long transferred = inChannel.transferTo(position, size - position, outChannel);
+						if (transferred <= 0) {
+							throw new IOException("Cannot transfer " + realPath + " at position " + position);
+						}
+						position += transferred;
+					}
+
+					lastByte.clear();
+					if (size > 0 && (inChannel.read(lastByte, size - 1) != 1 || lastByte.get(0) != '\n')) {
+						separator.rewind();
+						while (separator.hasRemaining()) {
+							outChannel.write(separator);
+						}
+					}
 				} finally {
-					IOUtils.closeQuietly(is);
+					IOUtils.closeQuietly(in);
 				}
 			}
+			out.close();
 		} finally {
-			IOUtils.closeQuietly(os);
-		}*/
+			IOUtils.closeQuietly(out);
+			if (log.isDebugEnabled()) {
+				log.debug("Merging " + target + " by bytes takes: " + (System.currentTimeMillis() - startTime));
+			}
+		}
+	}
 
-		return mergedFileName;
+	/**
+	 * The byte based merge detects new lines by byte, so the charset must encode them as in ASCII, e.g. UTF-8 or GBK.
+	 * 
+	 * @return whether the charset allows to merge by bytes
+	 */
+	private boolean isByteMergeSupported() {
+		try {
+			return Arrays.equals(NEW_LINE.getBytes(charset), NEW_LINE.getBytes("US-ASCII"))
+					&& Arrays.equals("\n".getBytes(charset), new byte[] { '\n' });
+		} catch (UnsupportedEncodingException e) {
+			return false;
+		}
 	}
 
+	/**
+	 * @param resourcePaths resources to merge
+	 * @return path of the merged resource, or null if it cannot be built, the resources should be referenced as is then
+	 */
 	private String getMergedResourcePath(Set<String> resourcePaths) {
 		if (resourcePaths.isEmpty()) {
 			return StringUtils.EMPTY;
 		} else {
-			String mergedElementPath = mergedResourcePaths.get(resourcePaths);
+			List<String> key = new ArrayList<String>(resourcePaths);
+			String mergedElementPath = mergedResourcePaths.get(key);
+			Long retryAfter = fallbackRetryTimes.get(key);
+			if (retryAfter != null) {
+				// built unminified, serve it as is until the minifier may succeed, then build it again.
+				completelyOptimized = false;
+				if (System.currentTimeMillis() >= retryAfter) {
+					mergedElementPath = null;
+				}
+			}
 			if (mergedElementPath == null) {
 				// usually this is the first time load, since no cache is hit.
-
-				mergedElementPath = merge(resourcePaths);
-
-				if (minify) {
-					minify(mergedElementPath);
+				// another node may have built it already, otherwise build it and share it.
+				mergedElementPath = getMergedFileRelativePath(resourcePaths);
+				String mergedRealPath = getRealPath(mergedElementPath);
+				if (mergedRealPath == null) {
+					log.warn("Cannot write " + mergedElementPath + ", the web application is not expanded");
+					return null;
 				}
+				sweeper.watch(new File(mergedRealPath).getParentFile());
+				BundleStore bundleStore = getBundleStore();
+				Closeable lock = null;
+				String fingerprint = null;
+				try {
+					boolean loaded = false;
+					try {
+						if (bundleStore.isShared()) {
+							lock = bundleStore.lock(mergedElementPath);
+							fingerprint = getFingerprint(resourcePaths);
+							loaded = bundleStore.load(mergedElementPath, new File(mergedRealPath), fingerprint);
+						}
+					} catch (IOException e) {
+						log.warn("Cannot load " + mergedElementPath + " from bundle store", e);
+					}
 
-				if (compress) {
-					long startTime = System.currentTimeMillis();
-					compress(mergedElementPath);
-					if (log.isDebugEnabled()) {
-						log.debug("Compressing " + mergedElementPath + " takes: " + (System.currentTimeMillis() - startTime));
+					if (!loaded) {
+						BuildResult result = build(resourcePaths, mergedElementPath);
+						if (result == BuildResult.FAILED) {
+							return null;
+						} else if (result == BuildResult.FALLBACK) {
+							// serve it unminified for now, but do not share it, it is built again after the retry time.
+							completelyOptimized = false;
+							mergedResourcePaths.put(key, mergedElementPath);
+							fallbackRetryTimes.put(key, fallbackRetryAfter);
+							return context.getContextPath() + mergedElementPath;
+						}
+						try {
+							if (fingerprint != null) {
+								bundleStore.store(mergedElementPath, new File(mergedRealPath), fingerprint);
+							}
+						} catch (IOException e) {
+							log.warn("Cannot put " + mergedElementPath + " to bundle store", e);
+						}
 					}
+				} finally {
+					IOUtils.closeQuietly(lock);
 				}
 
-				mergedResourcePaths.put(resourcePaths, mergedElementPath);
+				mergedResourcePaths.put(key, mergedElementPath);
+				fallbackRetryTimes.remove(key);
 
 				if (log.isInfoEnabled()) {
 					log.info("Optimized Resource File: " + mergedElementPath);
@@ -327,6 +554,126 @@ public abstract class AbstractOptimizerTag extends BodyTagSupport {
 		}
 	}
 
+	/**
+	 * Builds the optimized resource in a work file and publishes it in one step when it is complete,
+	 * so a request for the optimized resource never gets a partially written file.
+	 * If the build fails, the previous version is kept.
+	 * 
+	 * @param resourcePaths resources to optimize
+	 * @param mergedElementPath context relative path of the optimized resource
+	 * @return whether the optimized resource is published, and whether it is final
+	 */
+	private BuildResult build(Set<String> resourcePaths, String mergedElementPath) {
+		File target = new File(getRealPath(mergedElementPath));
+		File workFile = null;
+		boolean handedOver = false;
+		BuildResult result = BuildResult.COMPLETE;
+		try {
+			workFile = ArtifactPublisher.createWorkFile(target);
+			merge(resourcePaths, workFile);
+
+			if (minify) {
+				MinifyResult minified = minify(workFile);
+				if (minified.isFallback()) {
+					result = BuildResult.FALLBACK;
+					fallbackRetryAfter = minified.getRetryAfter();
+				}
+			}
+
+			if (compress) {
+				long startTime = System.currentTimeMillis();
+				compress(workFile);
+				if (log.isDebugEnabled()) {
+					log.debug("Compressing " + mergedElementPath + " takes: " + (System.currentTimeMillis() - startTime));
+				}
+			}
+
+			// the publisher owns the work file from now on.
+			handedOver = true;
+			ArtifactPublisher.publish(workFile, target);
+			return result;
+		} catch (IOException e) {
+			log.error("Cannot build " + mergedElementPath, e);
+			return BuildResult.FAILED;
+		} finally {
+			if (!handedOver) {
+				FileUtils.deleteQuietly(workFile);
+			}
+		}
+	}
+
+	/**
+	 * Digest of the content of the resources and of the settings which change the optimized resource, 
+	 * so a shared bundle is only reused for the same input, whatever the file dates on the nodes are.
+	 * 
+	 * @param resourcePaths resources to optimize
+	 * @return hex digest
+	 * @throws IOException
+	 */
+	private String getFingerprint(Set<String> resourcePaths) throws IOException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("Cannot fingerprint resources", e);
+		}
+		String settings = getClass().getName() + '\n' + charset + '\n' + minify + '\n' + minifier + '\n' + compress;
+		md.update(settings.getBytes("UTF-8"));
+
+		byte[] buffer = new byte[8192];
+		for (String src : resourcePaths) {
+			md.update((byte) 0);
+			String realPath = getRealPath(src);
+			if (realPath == null || !new File(realPath).isFile()) {
+				// skipped by merge as well.
+				continue;
+			}
+			FileInputStream in = new FileInputStream(realPath);
+			try {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					md.update(buffer, 0, read);
+				}
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+		return toHex(md.digest());
+	}
+
+	/**
+	 * Returns the store to share optimized resources with other nodes.
+	 * 
+	 * @return store on sharedDir if set, otherwise a store which shares nothing
+	 */
+	protected BundleStore getBundleStore() {
+		if (isBlank(sharedDir)) {
+			return LocalBundleStore.INSTANCE;
+		}
+		BundleStore bundleStore = sharedBundleStores.get(sharedDir);
+		if (bundleStore == null) {
+			bundleStore = new SharedDirectoryBundleStore(new File(sharedDir));
+			sharedBundleStores.put(sharedDir, bundleStore);
+		}
+		return bundleStore;
+	}
+
+	private enum BuildResult {
+		/** nothing is published */
+		FAILED,
+		/** published, but not minified since the minifier could not minify it this time */
+		FALLBACK,
+		COMPLETE
+	}
+
+	private static String toHex(byte[] hash) {
+		StringBuilder hex = new StringBuilder(hash.length * 2);
+		for (byte b : hash) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
 	private static Element createElement(String tagName, Map<String, String> attributeMap) {
 		Element mergedElement = new Element(Tag.valueOf(tagName), StringUtils.EMPTY);
 		if (attributeMap != null) {
@@ -376,43 +723,92 @@ public abstract class AbstractOptimizerTag extends BodyTagSupport {
 		}
 	}
 
-	protected void compress(String resourcePath) {
-		String realPath = getRealPath(resourcePath);
-		Writer out = null;
+	protected void compress(File file) throws IOException {
 		BufferedReader fileReader = null;
 		StringBuilder mergedContent = new StringBuilder(8192);
 		try {
-			fileReader = new BufferedReader(new InputStreamReader(new FileInputStream(realPath), charset));
+			fileReader = new BufferedReader(new InputStreamReader(new FileInputStream(file), charset));
 			String line = null;
 			while ((line = fileReader.readLine()) != null) {
 				mergedContent.append(line).append(NEW_LINE);
 			}
+		} finally {
 			IOUtils.closeQuietly(fileReader);
-			out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(realPath)), charset));
+		}
+
+		Writer out = null;
+		try {
+			out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), charset));
 			out.write(mergedContent.toString());
-		} catch (Exception e) {
-			log.error("Fail to compress with GZip", e);
+			out.close();
 		} finally {
-			IOUtils.closeQuietly(fileReader);
 			IOUtils.closeQuietly(out);
 		}
 	}
 
+	/**
+	 * The name is a digest of the ordered resource paths, 
+	 * so it is the same on every node and differs for the same resources in another order.
+	 * 
+	 * @param resourcePaths resources to merge
+	 * @return file name prefix of the merged file
+	 */
 	protected String getMergedFilenamePrefix(Set<String> resourcePaths) {
 		String prefix = (useServlet) ? SERVLET_MODE_FILE_PREFIX : STATIC_MODE_FILE_PREFIX;
-		return prefix + resourcePaths.hashCode();
+		return prefix + digest(StringUtils.join(resourcePaths, '\n'));
 	}
 
-	protected void minify(String resourcePath) {
+	/**
+	 * Minifies the file with the minifier selected by the minifier property. 
+	 * The file is kept as is if it cannot be minified in time.
+	 * 
+	 * @param file file to minify
+	 * @return result of the minifier, if it is a fallback the file should be minified again after its retry time.
+	 * The content of the result is written to the file already, if no minifier is found it is null.
+	 * @throws IOException
+	 */
+	protected MinifyResult minify(File file) throws IOException {
+		GuardedMinifier minifier = MinifierRegistry.get(getMinifierType(), this.minifier);
+		if (minifier == null) {
+			return MinifyResult.unminified(null);
+		}
+
+		long startTime = System.currentTimeMillis();
+		MinifyResult result = minifier.minify(FileUtils.readFileToString(file, charset), minifyTimeout);
+		if (!result.isFallback()) {
+			FileUtils.writeStringToFile(file, result.getContent(), charset);
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Minifying " + file + " with " + minifier.getMinifier().getName() + " takes: "
+					+ (System.currentTimeMillis() - startTime) + ", " + minifier.getStats());
+		}
+		return result;
+	}
 
+	/**
+	 * Minifies the content of an inline block with the minifier selected by the minifier property.
+	 * 
+	 * @param content body of an inline script or style block
+	 * @return minified content, or a fallback with the content as is if it cannot be minified in time
+	 */
+	protected MinifyResult minifyInline(String content) {
+		GuardedMinifier minifier = MinifierRegistry.get(getMinifierType(), this.minifier);
+		return (minifier == null) ? MinifyResult.unminified(content) : minifier.minify(content, minifyTimeout);
 	}
 
+	/**
+	 * @return resource type to select minifiers from {@link MinifierRegistry}
+	 */
+	protected abstract String getMinifierType();
+
 	protected abstract String getMergedFileRelativePath(Set<String> resourcePaths);
 
 	protected abstract OptTag getStandardOptTag();
 
 	protected abstract boolean needOptimize(OptTag tag);
 
+	protected abstract boolean needOptimizeInline(OptTag tag);
+
 	public void setEnabled(boolean enabled) {
 		this.enabled = enabled;
 	}
@@ -449,6 +845,30 @@ public abstract class AbstractOptimizerTag extends BodyTagSupport {
 		this.minify = minify;
 	}
 
+	public boolean isMinifyInline() {
+		return minifyInline;
+	}
+
+	public void setMinifyInline(boolean minifyInline) {
+		this.minifyInline = minifyInline;
+	}
+
+	public String getMinifier() {
+		return minifier;
+	}
+
+	public void setMinifier(String minifier) {
+		this.minifier = trimToEmpty(minifier);
+	}
+
+	public long getMinifyTimeout() {
+		return minifyTimeout;
+	}
+
+	public void setMinifyTimeout(long minifyTimeout) {
+		this.minifyTimeout = minifyTimeout;
+	}
+
 	public boolean isCompress() {
 		return compress;
 	}
@@ -472,4 +892,12 @@ public abstract class AbstractOptimizerTag extends BodyTagSupport {
 	public void setUseServlet(boolean useServlet) {
 		this.useServlet = useServlet;
 	}
+
+	public String getSharedDir() {
+		return sharedDir;
+	}
+
+	public void setSharedDir(String sharedDir) {
+		this.sharedDir = trimToEmpty(sharedDir);
+	}
 }
@@ -0,0 +1,23 @@
+package com.zcshen.perf.wpo.tag;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Stops the background work of the optimizer tags when the web application is stopped, 
+ * so the application could be redeployed without leaking threads.
+ * 
+ * @author Malcolm
+ * 
+ */
+public class OptimizerContextListener implements ServletContextListener {
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		AbstractOptimizerTag.stopSweeper();
+	}
+}
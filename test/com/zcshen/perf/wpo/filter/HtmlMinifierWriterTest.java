@@ -0,0 +1,80 @@
+package com.zcshen.perf.wpo.filter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class HtmlMinifierWriterTest {
+
+	@Test
+	public void whitespaceIsCollapsedAndCommentsRemoved() throws IOException {
+		assertEquals("<div> <p>a b</p> </div>", minify("<div>  <p>a   b</p> <!-- comment -->  </div>"));
+	}
+
+	@Test
+	public void rawTextTagsArePassedThrough() throws IOException {
+		String pre = "<pre>  a\n   b  </pre>";
+		String textarea = "<textarea>  x   y  </textarea>";
+		String script = "<script>if (a  <  b) { s = \"</div>  <!-- x -->\"; }</script>";
+		String style = "<style>  p  >  a { color: red; }  </style>";
+
+		assertEquals(pre + " " + textarea + " " + script + " " + style,
+				minify(pre + "  " + textarea + "  " + script + "  " + style));
+	}
+
+	@Test
+	public void conditionalCommentsAreKept() throws IOException {
+		String conditional = "<!--[if lt IE 9]>  <script src=\"html5.js\"></script>  <![endif]-->";
+
+		assertEquals(conditional + "<p>a</p>", minify(conditional + "<!-- removed --><p>a</p>"));
+	}
+
+	@Test
+	public void lessThanInTextIsNotTag() throws IOException {
+		assertEquals("<p>a < b c</p>", minify("<p>a  <  b   c</p>"));
+	}
+
+	@Test
+	public void quotedAttributeValuesAreKept() throws IOException {
+		assertEquals("<a title=\"x  >  y\" href='z'>t</a>", minify("<a  title=\"x  >  y\"   href='z'>t</a>"));
+		assertEquals("<a title = \"x  y\">t</a>", minify("<a title  =  \"x  y\">t</a>"));
+	}
+
+	@Test
+	public void quoteInsideUnquotedValueIsNotQuote() throws IOException {
+		assertEquals("<a title=it's>x y</a> <p>z</p>", minify("<a title=it's>x  y</a>  <p>z</p>"));
+	}
+
+	@Test
+	public void inputSplitAcrossWritesWithTinyBuffer() throws IOException {
+		String page = "<html>\n  <head><!--[if IE]><link href='ie.css'><![endif]-->\n"
+				+ "<style> p { a: b } </style></head>\n"
+				+ "<body>  <!-- comment -->  <p title=\"a  b\">x  <  y</p>\n"
+				+ "<pre>  1\n  2</pre><script>var s = '</p>  ';</script>  </body></html>";
+		String expected = minify(page);
+
+		for (int bufferSize = 1; bufferSize <= 3; bufferSize++) {
+			for (int chunk = 1; chunk <= 5; chunk++) {
+				StringWriter out = new StringWriter();
+				HtmlMinifierWriter writer = new HtmlMinifierWriter(out, bufferSize);
+				for (int i = 0; i < page.length(); i += chunk) {
+					writer.write(page, i, Math.min(chunk, page.length() - i));
+				}
+				writer.finish();
+
+				assertEquals("buffer " + bufferSize + ", chunk " + chunk, expected, out.toString());
+			}
+		}
+	}
+
+	private String minify(String content) throws IOException {
+		StringWriter out = new StringWriter();
+		HtmlMinifierWriter writer = new HtmlMinifierWriter(out, 1024);
+		writer.write(content);
+		writer.finish();
+		return out.toString();
+	}
+}
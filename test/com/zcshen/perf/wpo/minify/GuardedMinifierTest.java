@@ -0,0 +1,150 @@
+package com.zcshen.perf.wpo.minify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class GuardedMinifierTest {
+
+	@Test
+	public void minifiedResultIsNotFallback() {
+		GuardedMinifier minifier = new GuardedMinifier(new JSFastWhitespaceRemover());
+
+		MinifyResult result = minifier.minify("var a = 1;  // comment\n", 10000);
+
+		assertFalse(result.isFallback());
+		assertEquals("var a =1;", result.getContent().trim());
+		assertEquals(1, minifier.getStats().getInvocations());
+	}
+
+	@Test
+	public void failureFallsBackToContent() {
+		GuardedMinifier minifier = new GuardedMinifier(new FailingMinifier());
+
+		MinifyResult result = minifier.minify("a", 10000);
+
+		assertTrue(result.isFallback());
+		assertEquals("a", result.getContent());
+		assertEquals(1, minifier.getStats().getFailures());
+	}
+
+	@Test
+	public void timeoutFallsBackToContent() {
+		GuardedMinifier minifier = new GuardedMinifier(new SlowMinifier());
+
+		MinifyResult result = minifier.minify("a", 10);
+
+		assertTrue(result.isFallback());
+		assertEquals("a", result.getContent());
+		assertEquals(1, minifier.getStats().getTimeouts());
+	}
+
+	@Test
+	public void circuitOpensAfterConsecutiveFailures() {
+		GuardedMinifier minifier = new GuardedMinifier(new FailingMinifier());
+		for (int i = 0; i < 3; i++) {
+			minifier.minify("a", 10000);
+		}
+
+		MinifyResult result = minifier.minify("a", 10000);
+
+		assertTrue(result.isFallback());
+		assertEquals(3, minifier.getStats().getInvocations());
+		assertEquals(1, minifier.getStats().getSkipped());
+	}
+
+	@Test
+	public void fallbackTellsWhenToRetry() {
+		GuardedMinifier minifier = new GuardedMinifier(new FailingMinifier());
+		long startTime = System.currentTimeMillis();
+
+		MinifyResult result = minifier.minify("a", 10000);
+
+		assertTrue(result.isFallback());
+		assertTrue(result.getRetryAfter() > startTime);
+	}
+
+	@Test
+	public void stuckEngineIsNotInvokedAgainAndOpensCircuit() throws InterruptedException {
+		StuckMinifier stuck = new StuckMinifier();
+		GuardedMinifier minifier = new GuardedMinifier(stuck);
+		try {
+			assertTrue(minifier.minify("a", 10).isFallback());
+			assertTrue(minifier.minify("a", 10).isFallback());
+			assertTrue(minifier.minify("a", 10).isFallback());
+			MinifyResult result = minifier.minify("a", 10);
+
+			assertTrue(result.isFallback());
+			assertEquals(1, stuck.invocations.get());
+			assertEquals(1, minifier.getStats().getTimeouts());
+			assertEquals(2, minifier.getStats().getRejected());
+			assertEquals(1, minifier.getStats().getSkipped());
+			assertTrue(result.getRetryAfter() > System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(4));
+		} finally {
+			stuck.release.countDown();
+		}
+	}
+
+	private static class FailingMinifier implements Minifier {
+		@Override
+		public String getName() {
+			return "failing";
+		}
+
+		@Override
+		public void minify(Reader in, Writer out) throws IOException {
+			throw new IOException("broken");
+		}
+	}
+
+	private static class SlowMinifier implements Minifier {
+		@Override
+		public String getName() {
+			return "slow";
+		}
+
+		@Override
+		public void minify(Reader in, Writer out) throws IOException {
+			try {
+				Thread.sleep(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Ignores interrupts until released, as a CPU bound engine would.
+	 */
+	private static class StuckMinifier implements Minifier {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger invocations = new AtomicInteger();
+
+		@Override
+		public String getName() {
+			return "stuck";
+		}
+
+		@Override
+		public void minify(Reader in, Writer out) throws IOException {
+			invocations.incrementAndGet();
+			while (true) {
+				try {
+					release.await();
+					return;
+				} catch (InterruptedException e) {
+					// keep running
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package com.zcshen.perf.wpo.minify;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class JSFastWhitespaceRemoverTest {
+
+	@Test
+	public void commentsAndSpacesAreRemoved() throws IOException {
+		assertEquals("var a =1;", minify("var a = 1;  // comment\n/* block */"));
+	}
+
+	@Test
+	public void escapedQuoteDoesNotEndString() throws IOException {
+		assertEquals("var s =\"a \\\" // not comment\";var t =2;",
+				minify("var s = \"a \\\" // not comment\";\nvar t = 2;"));
+	}
+
+	@Test
+	public void escapedSingleQuoteDoesNotEndString() throws IOException {
+		assertEquals("var s ='it\\'s /* kept */';", minify("var s = 'it\\'s /* kept */';"));
+	}
+
+	@Test
+	public void escapedBackslashEndsString() throws IOException {
+		assertEquals("var s =\"\\\\\";var t =2;", minify("var s = \"\\\\\"; // comment\nvar t = 2;"));
+	}
+
+	private String minify(String content) throws IOException {
+		StringWriter out = new StringWriter();
+		new JSFastWhitespaceRemover().minify(new StringReader(content), out);
+		return out.toString().trim();
+	}
+}
@@ -0,0 +1,98 @@
+package com.zcshen.perf.wpo.store;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArtifactSweeperTest {
+
+	private static final long TWO_DAYS_AGO = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2);
+
+	private File directory;
+	private List<String> livePaths;
+	private ArtifactSweeper sweeper;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = new File(FileUtils.getTempDirectory(), "wpo-sweeper-" + System.nanoTime());
+		FileUtils.forceMkdir(directory);
+		livePaths = new ArrayList<String>();
+		sweeper = new ArtifactSweeper(livePaths, "Opt_static_");
+		sweeper.watch(directory);
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(directory);
+	}
+
+	@Test
+	public void artifactsOfPreviousRunAreKeptForGracePeriodAfterStart() throws IOException {
+		File old = createArtifact("Opt_static_old.js", TWO_DAYS_AGO);
+
+		sweeper.sweep();
+
+		assertTrue(old.exists());
+	}
+
+	@Test
+	public void unreferencedArtifactsAreDeletedAfterGracePeriod() throws IOException {
+		File live = createArtifact("Opt_static_live.js", TWO_DAYS_AGO);
+		File unreferenced = createArtifact("Opt_static_unreferenced.js", TWO_DAYS_AGO);
+		File work = createArtifact(".Opt_static_work.js.1234.tmp", TWO_DAYS_AGO);
+		File other = createArtifact("other.js", TWO_DAYS_AGO);
+		livePaths.add("/js/Opt_static_live.js");
+
+		// started an hour ago, so the grace period after the start is over whatever the clock resolution is.
+		sweeper = new ArtifactSweeper(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1), livePaths, "Opt_static_");
+		sweeper.watch(directory);
+		sweeper.setGracePeriod(TimeUnit.MINUTES.toMillis(1));
+		sweeper.sweep();
+
+		assertTrue(live.exists());
+		assertFalse(unreferenced.exists());
+		assertFalse(work.exists());
+		assertTrue(other.exists());
+	}
+
+	@Test
+	public void recentlyBuiltArtifactsAreKept() throws IOException {
+		File recent = createArtifact("Opt_static_recent.js", System.currentTimeMillis());
+
+		sweeper.setGracePeriod(0);
+		sweeper.setQuota(1);
+		sweeper.sweep();
+
+		assertTrue(recent.exists());
+	}
+
+	@Test
+	public void quotaDeletesUnreferencedArtifactsOnly() throws IOException {
+		File live = createArtifact("Opt_static_live.js", TWO_DAYS_AGO);
+		File unreferenced = createArtifact("Opt_static_unreferenced.js", TWO_DAYS_AGO);
+		livePaths.add("/js/Opt_static_live.js");
+
+		sweeper.setQuota(1);
+		sweeper.sweep();
+
+		assertTrue(live.exists());
+		assertFalse(unreferenced.exists());
+	}
+
+	private File createArtifact(String name, long lastModified) throws IOException {
+		File file = new File(directory, name);
+		FileUtils.writeStringToFile(file, "var a=1;", "UTF-8");
+		assertTrue(file.setLastModified(lastModified));
+		return file;
+	}
+}
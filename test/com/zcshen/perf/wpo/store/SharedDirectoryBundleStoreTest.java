@@ -0,0 +1,126 @@
+package com.zcshen.perf.wpo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SharedDirectoryBundleStoreTest {
+
+	private static final String BUNDLE_PATH = "/js/Opt_static_0123456789abcdef.js";
+	private static final String FINGERPRINT = "fedcba9876543210";
+
+	private File root;
+	private File sharedDir;
+	private File node1Dir;
+	private File node2Dir;
+
+	@Before
+	public void setUp() throws IOException {
+		root = new File(FileUtils.getTempDirectory(), "wpo-store-" + System.nanoTime());
+		sharedDir = new File(root, "shared");
+		node1Dir = new File(root, "node1");
+		node2Dir = new File(root, "node2");
+		FileUtils.forceMkdir(sharedDir);
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(root);
+	}
+
+	@Test
+	public void loadReturnsFalseWhenNothingStored() throws IOException {
+		SharedDirectoryBundleStore store = new SharedDirectoryBundleStore(sharedDir);
+		File target = new File(node1Dir, BUNDLE_PATH);
+
+		assertFalse(store.load(BUNDLE_PATH, target, FINGERPRINT));
+		assertFalse(target.exists());
+	}
+
+	@Test
+	public void bundleStoredByOneNodeIsLoadedByAnother() throws IOException {
+		File built = new File(node1Dir, BUNDLE_PATH);
+		FileUtils.writeStringToFile(built, "var a=1;", "UTF-8");
+		new SharedDirectoryBundleStore(sharedDir).store(BUNDLE_PATH, built, FINGERPRINT);
+
+		File target = new File(node2Dir, BUNDLE_PATH);
+		assertTrue(new SharedDirectoryBundleStore(sharedDir).load(BUNDLE_PATH, target, FINGERPRINT));
+		assertEquals("var a=1;", FileUtils.readFileToString(target, "UTF-8"));
+	}
+
+	@Test
+	public void bundleOfOtherInputIsNotLoaded() throws IOException {
+		File built = new File(node1Dir, BUNDLE_PATH);
+		FileUtils.writeStringToFile(built, "var a=1;", "UTF-8");
+		SharedDirectoryBundleStore store = new SharedDirectoryBundleStore(sharedDir);
+		store.store(BUNDLE_PATH, built, FINGERPRINT);
+
+		assertFalse(store.load(BUNDLE_PATH, new File(node2Dir, BUNDLE_PATH), "0011223344556677"));
+	}
+
+	@Test
+	public void bundlesOfDifferentInputsAreKeptApart() throws IOException {
+		File oldRelease = new File(node1Dir, BUNDLE_PATH);
+		FileUtils.writeStringToFile(oldRelease, "var a=1;", "UTF-8");
+		File newRelease = new File(node2Dir, BUNDLE_PATH);
+		FileUtils.writeStringToFile(newRelease, "var a=2;", "UTF-8");
+		SharedDirectoryBundleStore store = new SharedDirectoryBundleStore(sharedDir);
+		store.store(BUNDLE_PATH, newRelease, FINGERPRINT);
+		// a node of the previous release builds the bundle after the new one
+		store.store(BUNDLE_PATH, oldRelease, "0011223344556677");
+
+		File target = new File(root, "node3" + BUNDLE_PATH);
+		assertTrue(store.load(BUNDLE_PATH, target, FINGERPRINT));
+		assertEquals("var a=2;", FileUtils.readFileToString(target, "UTF-8"));
+	}
+
+	@Test
+	public void storeLeavesNoWorkFiles() throws IOException {
+		File built = new File(node1Dir, BUNDLE_PATH);
+		FileUtils.writeStringToFile(built, "var a=1;", "UTF-8");
+		new SharedDirectoryBundleStore(sharedDir).store(BUNDLE_PATH, built, FINGERPRINT);
+
+		String[] names = new File(sharedDir, "js").list();
+		assertEquals(1, names.length);
+		assertEquals("Opt_static_0123456789abcdef.js." + FINGERPRINT, names[0]);
+	}
+
+	@Test
+	public void lockTimesOutWhileHeld() throws Exception {
+		final SharedDirectoryBundleStore store = new SharedDirectoryBundleStore(sharedDir, 200);
+		Closeable lock = store.lock(BUNDLE_PATH);
+		try {
+			final Exception[] result = new Exception[1];
+			Thread other = new Thread() {
+				@Override
+				public void run() {
+					try {
+						store.lock(BUNDLE_PATH).close();
+					} catch (Exception e) {
+						result[0] = e;
+					}
+				}
+			};
+			other.start();
+			other.join(5000);
+			if (!(result[0] instanceof IOException)) {
+				fail("Lock should time out while held, but got " + result[0]);
+			}
+		} finally {
+			lock.close();
+		}
+
+		// released, could be acquired again
+		store.lock(BUNDLE_PATH).close();
+	}
+}
@@ -0,0 +1,101 @@
+package com.zcshen.perf.wpo.tag;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.servlet.ServletContext;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Compares the char based merge with the byte based merge used when minify is off.
+ * Run the main method with the test class path, e.g. from the IDE, optionally with arguments:
+ * number of members, lines per member, iterations.
+ *
+ * @author Malcolm
+ *
+ */
+public class MergeBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int members = (args.length > 0) ? Integer.parseInt(args[0]) : 40;
+		int lines = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+		int iterations = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+
+		AbstractOptimizerTag.init(createServletContext());
+		File directory = new File(FileUtils.getTempDirectory(), "wpo-merge-benchmark-" + System.nanoTime());
+		try {
+			Set<String> resourcePaths = createMembers(directory, members, lines);
+			File charMerged = new File(directory, "char.js");
+			File byteMerged = new File(directory, "byte.js");
+			JsOptimizerTag tag = new JsOptimizerTag();
+
+			for (int round = 1; round <= 3; round++) {
+				// minify on selects the char based merge, minify off the byte based merge.
+				tag.setMinify(true);
+				long charNanos = time(tag, resourcePaths, charMerged, iterations);
+				tag.setMinify(false);
+				long byteNanos = time(tag, resourcePaths, byteMerged, iterations);
+
+				System.out.printf("round %d: %d KB, char path %.2f ms/merge, byte path %.2f ms/merge%n", round,
+						byteMerged.length() / 1024, charNanos / iterations / 1e6, byteNanos / iterations / 1e6);
+			}
+			System.out.println("same content: " + FileUtils.contentEquals(charMerged, byteMerged));
+		} finally {
+			FileUtils.deleteQuietly(directory);
+			AbstractOptimizerTag.stopSweeper();
+		}
+	}
+
+	private static long time(AbstractOptimizerTag tag, Set<String> resourcePaths, File target, int iterations)
+			throws IOException {
+		long startTime = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			tag.merge(resourcePaths, target);
+		}
+		return System.nanoTime() - startTime;
+	}
+
+	private static Set<String> createMembers(File directory, int members, int lines) throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			content.append("function f").append(i).append("(a, b) { return a + b; /* 中文 */ }")
+					.append(System.getProperty("line.separator"));
+		}
+
+		Set<String> resourcePaths = new LinkedHashSet<String>();
+		for (int i = 0; i < members; i++) {
+			File member = new File(directory, "member" + i + ".js");
+			FileUtils.writeStringToFile(member, content.toString(), "UTF-8");
+			resourcePaths.add(member.getAbsolutePath());
+		}
+		return resourcePaths;
+	}
+
+	/**
+	 * Context with an empty context path, which resolves real paths as is.
+	 */
+	private static ServletContext createServletContext() {
+		return (ServletContext) Proxy.newProxyInstance(MergeBenchmark.class.getClassLoader(),
+				new Class<?>[] { ServletContext.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						String name = method.getName();
+						if ("getContextPath".equals(name)) {
+							return "";
+						} else if ("getRealPath".equals(name)) {
+							return args[0];
+						} else if ("getInitParameter".equals(name)) {
+							// no background sweeping
+							return "wpo.sweeper.interval".equals(args[0]) ? "0" : null;
+						}
+						return null;
+					}
+				});
+	}
+}